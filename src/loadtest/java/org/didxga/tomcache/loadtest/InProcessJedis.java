@@ -0,0 +1,65 @@
+package org.didxga.tomcache.loadtest;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process stand-in for Redis, covering the commands {@link org.didxga.tomcache.RedisCacheRepository}
+ * uses in its default mode: PING, GET, SET, EXISTS and EXPIREAT.
+ *
+ * <p>It never opens a connection, which lets the load test measure the filter and repository
+ * code without a server or network in the way. It is handed to the repository as a single
+ * connection, so the repository serializes all commands on it. Scripted commands (deduplication,
+ * fill lock) are not supported, the redis-dedup and redis-filllock modes need a real server.
+ * </p>
+ */
+public class InProcessJedis extends Jedis {
+
+    private Map<String, String> values = new ConcurrentHashMap<>();
+    private Map<String, Long> expireAtMillis = new ConcurrentHashMap<>();
+
+    @Override
+    public String ping() {
+        return "PONG";
+    }
+
+    @Override
+    public String get(String key) {
+        Long expireAt = expireAtMillis.get(key);
+        if (expireAt != null && expireAt <= System.currentTimeMillis()) {
+            values.remove(key);
+            expireAtMillis.remove(key);
+            return null;
+        }
+        return values.get(key);
+    }
+
+    @Override
+    public String set(String key, String value) {
+        values.put(key, value);
+        expireAtMillis.remove(key);
+        return "OK";
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public long expireAt(String key, long unixTime) {
+        if (!values.containsKey(key)) {
+            return 0;
+        }
+        expireAtMillis.put(key, unixTime * 1000);
+        return 1;
+    }
+
+    @Override
+    public void close() {
+        values.clear();
+        expireAtMillis.clear();
+    }
+}
@@ -0,0 +1,388 @@
+package org.didxga.tomcache.loadtest;
+
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.deploy.FilterDef;
+import org.apache.catalina.deploy.FilterMap;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+import org.didxga.tomcache.CacheRepository;
+import org.didxga.tomcache.MemoryCacheRepository;
+import org.didxga.tomcache.RedisCacheRepository;
+import org.didxga.tomcache.TomcacheFilter;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * End-to-end load test of {@link TomcacheFilter} inside an embedded Tomcat.
+ *
+ * <p>For every repository mode a fresh Tomcat is started with the filter in front of a
+ * {@link SyntheticServlet}. Requests for a zipfian mix of keys are then issued at a fixed
+ * rate, first for a warm-up phase and then for the measured phase. Latency is taken from the
+ * moment a request was scheduled to be sent, so a stalled server shows up in the percentiles
+ * instead of silently lowering the rate. Allocation is measured on the Tomcat request threads.
+ * </p>
+ *
+ * <p>Run with
+ * {@code mvn -Ploadtest test-compile exec:java -Dexec.args="modes=memory,redis rate=2000 duration=30"}.
+ * Arguments are {@code name=value} pairs, see {@link Config} for names and defaults. Modes are
+ * <ul>
+ * <li>{@code memory} and {@code memory-dedup}: a {@link MemoryCacheRepository} without and with dedup.</li>
+ * <li>{@code redis}: a {@link RedisCacheRepository} on a single {@link InProcessJedis} connection. The
+ * repository serializes every command on a single connection, so this measures that serialized path,
+ * not the pooled one production uses by default.</li>
+ * <li>{@code redis-local}, {@code redis-dedup} and {@code redis-filllock}: a pooled
+ * {@link RedisCacheRepository} against the Redis server at {@code redisHost:redisPort}, plain, with the
+ * {@code dedup} init parameter and with the {@code fillLock} init parameter. The keys the filter
+ * writes ({@code /item/*} and {@code tomcache:*}) are deleted from that server before each run.</li>
+ * </ul>
+ * The default modes need no Redis server.
+ * </p>
+ */
+public class LoadHarness {
+
+    // held so the level is not lost when the logger gets collected, failed requests show up as errors
+    private static final Logger TOMCAT_LOGGER = Logger.getLogger("org.apache");
+
+    /**
+     * Load test parameters, parsed from {@code name=value} arguments.
+     */
+    public static class Config {
+        List<String> modes = Arrays.asList("memory", "memory-dedup", "redis");
+        int keys = 1000;
+        double zipf = 0.99;
+        int rate = 1000;
+        int duration = 20;
+        int warmup = 5;
+        int clients = 64;
+        int serverThreads = 200;
+        int bodySize = 4096;
+        int bodyVariants = -1;
+        long latency = 5;
+        long ttl = 300;
+        long seed = 42;
+        String redisHost = "localhost";
+        int redisPort = 6379;
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("expected name=value: " + arg);
+                }
+                String name = arg.substring(0, eq);
+                String value = arg.substring(eq + 1);
+                switch (name) {
+                    case "modes": config.modes = Arrays.asList(value.split(",")); break;
+                    case "keys": config.keys = Integer.parseInt(value); break;
+                    case "zipf": config.zipf = Double.parseDouble(value); break;
+                    case "rate": config.rate = Integer.parseInt(value); break;
+                    case "duration": config.duration = Integer.parseInt(value); break;
+                    case "warmup": config.warmup = Integer.parseInt(value); break;
+                    case "clients": config.clients = Integer.parseInt(value); break;
+                    case "serverThreads": config.serverThreads = Integer.parseInt(value); break;
+                    case "bodySize": config.bodySize = Integer.parseInt(value); break;
+                    case "bodyVariants": config.bodyVariants = Integer.parseInt(value); break;
+                    case "latency": config.latency = Long.parseLong(value); break;
+                    case "ttl": config.ttl = Long.parseLong(value); break;
+                    case "seed": config.seed = Long.parseLong(value); break;
+                    case "redisHost": config.redisHost = value; break;
+                    case "redisPort": config.redisPort = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("unknown parameter: " + name);
+                }
+            }
+            if (config.bodyVariants <= 0) {
+                // every key has its own body unless asked otherwise
+                config.bodyVariants = config.keys;
+            }
+            return config;
+        }
+
+        @Override
+        public String toString() {
+            return "keys=" + keys + " zipf=" + zipf + " rate=" + rate + "/s duration=" + duration + "s warmup=" + warmup
+                    + "s clients=" + clients + " serverThreads=" + serverThreads + " bodySize=" + bodySize
+                    + " bodyVariants=" + bodyVariants + " latency=" + latency + "ms ttl=" + ttl + "s seed=" + seed + " redis=" + redisHost + ":" + redisPort;
+        }
+    }
+
+    private static class Phase {
+        long[] latencies;
+        int errors;
+        long elapsedNanos;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.parse(args);
+        TOMCAT_LOGGER.setLevel(Level.SEVERE);
+        // keep-alive connections are pooled per destination, 5 by default
+        System.setProperty("http.maxConnections", String.valueOf(config.clients));
+
+        System.out.println(config);
+        System.out.println(String.format("%-14s %9s %7s %10s %9s %9s %9s %7s %10s %10s %7s",
+                "mode", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "hit", "alloc MB/s", "alloc KB/r", "dedup"));
+        for (String mode : config.modes) {
+            run(mode, config);
+        }
+    }
+
+    private static void run(String mode, Config config) throws Exception {
+        CacheRepository repository = createRepository(mode, config);
+        SyntheticServlet servlet = new SyntheticServlet(config.bodySize, config.bodyVariants, config.latency, config.ttl);
+        Path baseDir = Files.createTempDirectory("tomcache-loadtest");
+        Tomcat tomcat = startTomcat(baseDir, new TomcacheFilter(repository), filterParameters(mode), servlet, config.serverThreads);
+        try {
+            int port = tomcat.getConnector().getLocalPort();
+            ZipfianKeys zipfian = new ZipfianKeys(config.keys, config.zipf);
+
+            drive(port, zipfian.sequence(config.rate * config.warmup, config.seed + 1), config);
+
+            long callsBefore = servlet.getCalls();
+            Map<Long, Long> allocatedBefore = serverAllocations();
+            Phase phase = drive(port, zipfian.sequence(config.rate * config.duration, config.seed), config);
+            long allocated = allocatedSince(allocatedBefore);
+            long calls = servlet.getCalls() - callsBefore;
+
+            report(mode, phase, calls, allocated, dedupRatio(repository));
+        } finally {
+            tomcat.stop();
+            tomcat.destroy();
+            delete(baseDir.toFile());
+        }
+    }
+
+    private static CacheRepository createRepository(String mode, Config config) {
+        switch (mode) {
+            case "memory": return new MemoryCacheRepository();
+            case "memory-dedup": return new MemoryCacheRepository(true);
+            case "redis": return new RedisCacheRepository(new InProcessJedis());
+            case "redis-local":
+            case "redis-dedup":
+            case "redis-filllock":
+                JedisPooled pool = new JedisPooled(config.redisHost, config.redisPort);
+                // fail the run here, the repository only logs a failed ping
+                pool.ping();
+                clearRedis(pool);
+                return new RedisCacheRepository(pool);
+            default: throw new IllegalArgumentException("unknown mode: " + mode);
+        }
+    }
+
+    private static Map<String, String> filterParameters(String mode) {
+        switch (mode) {
+            case "redis-dedup": return Collections.singletonMap("dedup", "true");
+            case "redis-filllock": return Collections.singletonMap("fillLock", "true");
+            default: return Collections.emptyMap();
+        }
+    }
+
+    // entries of an earlier run would turn the first misses into hits
+    private static void clearRedis(JedisPooled pool) {
+        for (String pattern : Arrays.asList("/item/*", "tomcache:*")) {
+            ScanParams params = new ScanParams().match(pattern).count(1000);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                ScanResult<String> result = pool.scan(cursor, params);
+                if (!result.getResult().isEmpty()) {
+                    pool.del(result.getResult().toArray(new String[0]));
+                }
+                cursor = result.getCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        }
+    }
+
+    private static double dedupRatio(CacheRepository repository) {
+        if (repository instanceof MemoryCacheRepository) {
+            return ((MemoryCacheRepository) repository).getDedupRatio();
+        }
+        if (repository instanceof RedisCacheRepository) {
+            return ((RedisCacheRepository) repository).getWriteDedupRatio();
+        }
+        return 1.0;
+    }
+
+    private static Tomcat startTomcat(Path baseDir, TomcacheFilter filter, Map<String, String> filterParameters,
+                                      SyntheticServlet servlet, int serverThreads) throws Exception {
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.toString());
+        tomcat.setPort(0);
+        tomcat.getConnector().setAttribute("maxThreads", serverThreads);
+
+        StandardContext context = (StandardContext) tomcat.addContext("", baseDir.toString());
+        // nothing to discover on the build class path, and scanning it only adds noise
+        ((StandardJarScanner) context.getJarScanner()).setScanClassPath(false);
+        // the leak cleanup on stop relies on reflection into the JDK that newer JVMs refuse
+        context.setClearReferencesObjectStreamClassCaches(false);
+        context.setClearReferencesRmiTargets(false);
+        Tomcat.addServlet(context, "origin", servlet);
+        context.addServletMapping("/item/*", "origin");
+
+        FilterDef filterDef = new FilterDef();
+        filterDef.setFilterName("tomcache");
+        filterDef.setFilterClass(TomcacheFilter.class.getName());
+        filterDef.setFilter(filter);
+        for (Map.Entry<String, String> parameter : filterParameters.entrySet()) {
+            filterDef.addInitParameter(parameter.getKey(), parameter.getValue());
+        }
+        context.addFilterDef(filterDef);
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName("tomcache");
+        filterMap.addURLPattern("/*");
+        context.addFilterMap(filterMap);
+
+        tomcat.start();
+        return tomcat;
+    }
+
+    /**
+     * Issue one request per rank at a fixed rate, request {@code i} being due at {@code start + i / rate}.
+     */
+    private static Phase drive(final int port, final int[] ranks, Config config) throws InterruptedException {
+        final long period = TimeUnit.SECONDS.toNanos(1) / config.rate;
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        // every index is written by exactly one client, awaitTermination publishes them
+        final long[] latencies = new long[ranks.length];
+
+        ExecutorService clients = Executors.newFixedThreadPool(config.clients);
+        for (int c = 0; c < config.clients; c++) {
+            clients.submit(new Runnable() {
+                @Override
+                public void run() {
+                    int i;
+                    while ((i = next.getAndIncrement()) < ranks.length) {
+                        long due = start + i * period;
+                        long wait;
+                        while ((wait = due - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        try {
+                            get(port, ranks[i]);
+                            latencies[i] = System.nanoTime() - due;
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                            latencies[i] = -1;
+                        }
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        Phase phase = new Phase();
+        phase.elapsedNanos = System.nanoTime() - start;
+        phase.errors = errors.get();
+        phase.latencies = latencies;
+        return phase;
+    }
+
+    private static void get(int port, int key) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/item/" + key).openConnection();
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                //read to the end so the connection can be kept alive
+            }
+            in.close();
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("status " + status + " for key " + key);
+        }
+    }
+
+    private static void report(String mode, Phase phase, long originCalls, long allocatedBytes, double dedupRatio) {
+        long[] sorted = new long[phase.latencies.length];
+        int completed = 0;
+        for (long latency : phase.latencies) {
+            if (latency >= 0) {
+                sorted[completed++] = latency;
+            }
+        }
+        sorted = Arrays.copyOf(sorted, completed);
+        Arrays.sort(sorted);
+        double seconds = phase.elapsedNanos / 1e9;
+        double hitRatio = completed == 0 ? 0 : Math.max(0, 1.0 - (double) originCalls / completed);
+
+        System.out.println(String.format("%-14s %9d %7d %10.1f %9.3f %9.3f %9.3f %7.3f %10.1f %10.2f %7.2f",
+                mode, phase.latencies.length, phase.errors, completed / seconds,
+                percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.99), percentileMillis(sorted, 0.999),
+                hitRatio, allocatedBytes / seconds / (1024 * 1024),
+                completed == 0 ? 0 : allocatedBytes / 1024.0 / completed, dedupRatio));
+    }
+
+    private static double percentileMillis(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * @return bytes allocated so far by each live Tomcat request thread, by thread id
+     */
+    private static Map<Long, Long> serverAllocations() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Map<Long, Long> allocated = new HashMap<>();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return allocated;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        for (ThreadInfo info : bean.getThreadInfo(bean.getAllThreadIds())) {
+            if (info != null && info.getThreadName().contains("-exec-")) {
+                long bytes = threads.getThreadAllocatedBytes(info.getThreadId());
+                if (bytes >= 0) {
+                    allocated.put(info.getThreadId(), bytes);
+                }
+            }
+        }
+        return allocated;
+    }
+
+    private static long allocatedSince(Map<Long, Long> before) {
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : serverAllocations().entrySet()) {
+            Long previous = before.get(entry.getKey());
+            total += entry.getValue() - (previous == null ? 0 : previous);
+        }
+        return total;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
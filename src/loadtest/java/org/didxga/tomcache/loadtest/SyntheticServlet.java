@@ -0,0 +1,69 @@
+package org.didxga.tomcache.loadtest;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Origin servlet behind the filter, answering {@code /item/<n>} with a synthetic body.
+ *
+ * <p>Every call sleeps for the configured latency, sets {@code Cache-Control: max-age} to the
+ * configured TTL and writes a body of the configured size. Key {@code n} gets body variant
+ * {@code n % bodyVariants}, so fewer variants than keys means byte-identical bodies under
+ * different URIs. Each call is counted, which gives the hit ratio of the filter in front.
+ * </p>
+ */
+public class SyntheticServlet extends HttpServlet {
+
+    private int bodySize;
+    private int bodyVariants;
+    private long latencyMillis;
+    private long ttlSeconds;
+    private AtomicLong calls = new AtomicLong();
+
+    public SyntheticServlet(int bodySize, int bodyVariants, long latencyMillis, long ttlSeconds) {
+        this.bodySize = bodySize;
+        this.bodyVariants = Math.max(1, bodyVariants);
+        this.latencyMillis = latencyMillis;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        calls.incrementAndGet();
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int key;
+        try {
+            String path = req.getPathInfo();
+            key = Integer.parseInt(path == null ? "0" : path.substring(1));
+        } catch (NumberFormatException e) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        resp.setContentType("text/plain");
+        resp.setHeader("Cache-Control", "max-age=" + ttlSeconds);
+        resp.getWriter().write(body(key % bodyVariants));
+    }
+
+    // built on every call like a real origin would, so identical bodies are distinct instances
+    private String body(int variant) {
+        char[] chars = new char[bodySize];
+        String prefix = "variant-" + variant + "\n";
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = i < prefix.length() ? prefix.charAt(i) : (char) ('a' + (i + variant) % 26);
+        }
+        return new String(chars);
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+}
@@ -0,0 +1,47 @@
+package org.didxga.tomcache.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Zipfian distribution over key ranks 0..keys-1, rank 0 being the most popular.
+ *
+ * <p>The probability of rank {@code r} is proportional to {@code 1 / (r + 1)^exponent};
+ * an exponent of 0 gives a uniform mix. Sequences are drawn from a seeded {@link Random}
+ * so that runs are reproducible.
+ * </p>
+ */
+public class ZipfianKeys {
+
+    private double[] cdf;
+
+    public ZipfianKeys(int keys, double exponent) {
+        if (keys <= 0) {
+            throw new IllegalArgumentException("keys must be positive: " + keys);
+        }
+        cdf = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    public int next(Random random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        index = index >= 0 ? index : -index - 1;
+        return Math.min(index, cdf.length - 1);
+    }
+
+    public int[] sequence(int length, long seed) {
+        Random random = new Random(seed);
+        int[] ranks = new int[length];
+        for (int i = 0; i < length; i++) {
+            ranks[i] = next(random);
+        }
+        return ranks;
+    }
+}
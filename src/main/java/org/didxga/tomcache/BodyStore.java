@@ -0,0 +1,71 @@
+package org.didxga.tomcache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reference counted store of response bodies, addressed by their content.
+ *
+ * <p>Identical bodies handed to {@link #acquire(String)} are collapsed onto one canonical
+ * instance, so a payload shared by many keys is held in memory once. The body is dropped
+ * from the store when the last reference is released.
+ * </p>
+ */
+public class BodyStore {
+
+    private static class Entry {
+        String body;
+        int refs;
+    }
+
+    // String hashing and equality already address the body by content, and identical
+    // instances short-circuit the comparison on release
+    private Map<String, Entry> bodies = new HashMap<>();
+    private long logicalSize;
+    private long storedSize;
+
+    /**
+     * Add a reference to the given body.
+     *
+     * @param body response body
+     * @return the canonical instance holding the same content
+     */
+    public synchronized String acquire(String body) {
+        Entry entry = bodies.get(body);
+        if (entry == null) {
+            entry = new Entry();
+            entry.body = body;
+            bodies.put(body, entry);
+            storedSize += body.length();
+        }
+        entry.refs++;
+        logicalSize += body.length();
+        return entry.body;
+    }
+
+    /**
+     * Drop a reference to the given body, removing it once nothing refers to it.
+     */
+    public synchronized void release(String body) {
+        Entry entry = bodies.get(body);
+        if (entry == null) {
+            return;
+        }
+        logicalSize -= body.length();
+        if (--entry.refs <= 0) {
+            bodies.remove(body);
+            storedSize -= body.length();
+        }
+    }
+
+    public synchronized int size() {
+        return bodies.size();
+    }
+
+    /**
+     * @return size of all referenced bodies divided by the size actually stored, 1.0 when empty
+     */
+    public synchronized double getDedupRatio() {
+        return storedSize == 0 ? 1.0 : (double) logicalSize / storedSize;
+    }
+}
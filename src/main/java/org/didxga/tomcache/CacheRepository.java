@@ -11,6 +11,11 @@ package org.didxga.tomcache;
  */
 public interface CacheRepository {
 
+    /**
+     * Servlet context attribute the filter publishes its repository under, e.g. to read the dedup ratio
+     */
+    public static final String CONTEXT_ATTRIBUTE = CacheRepository.class.getName();
+
     public void store(Key key, Value value);
 
     public Value retrieve(Key key);
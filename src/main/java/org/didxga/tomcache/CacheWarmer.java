@@ -0,0 +1,227 @@
+package org.didxga.tomcache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms the cache up with the URIs of a hot key snapshot.
+ *
+ * <p>Warm-up only has an effect when {@code baseUrl} is set: a URI missing from the repository
+ * is then regenerated by requesting it from {@code baseUrl}, so the response goes through
+ * {@link TomcacheFilter} and gets stored like any other miss. A URI already in the repository
+ * needs nothing, the repository is the store requests are served from. Without a base URL
+ * missing URIs are only counted as skipped.
+ * </p>
+ *
+ * <p>The filter starts warming up from {@code init}, before the container accepts connections,
+ * so refused connections are retried with backoff until the warm-up timeout. Work runs on a
+ * bounded pool in the background, and the progress getters can be used to gate a readiness probe.
+ * </p>
+ */
+public class CacheWarmer {
+
+    /**
+     * Servlet context attribute the filter publishes its warmer under
+     */
+    public static final String CONTEXT_ATTRIBUTE = CacheWarmer.class.getName();
+
+    /**
+     * Header set on regeneration requests, so that they are not counted as traffic
+     */
+    public static final String WARMUP_HEADER = "X-Tomcache-Warmup";
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60000;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final long INITIAL_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private CacheRepository repository;
+    private String baseUrl;
+    private long timeoutMillis;
+    private ExecutorService executorService;
+
+    private volatile int total;
+    private AtomicInteger completed = new AtomicInteger();
+    private AtomicInteger present = new AtomicInteger();
+    private AtomicInteger regenerated = new AtomicInteger();
+    private AtomicInteger skipped = new AtomicInteger();
+    private AtomicInteger failed = new AtomicInteger();
+    private volatile long startTime;
+    private volatile long endTime;
+
+    public CacheWarmer(CacheRepository repository, String baseUrl, int threads) {
+        this(repository, baseUrl, threads, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param repository    repository to warm up
+     * @param baseUrl       scheme, host and port missing URIs are requested from, null to regenerate nothing
+     * @param threads       maximum number of URIs warmed up in parallel
+     * @param timeoutMillis how long refused connections are retried, counted from the start of the warm-up
+     */
+    public CacheWarmer(CacheRepository repository, String baseUrl, int threads, long timeoutMillis) {
+        this.repository = repository;
+        this.baseUrl = baseUrl;
+        this.timeoutMillis = timeoutMillis;
+        this.executorService = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Start warming up the given URIs, returns without waiting for them. A warmer warms up once.
+     */
+    public void warmUp(List<String> uris) {
+        this.total = uris.size();
+        this.startTime = System.currentTimeMillis();
+        if (uris.isEmpty()) {
+            this.endTime = startTime;
+            this.executorService.shutdown();
+            return;
+        }
+        for (final String uri : uris) {
+            executorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        warmUp(uri);
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        System.err.println("CacheWarmer: failed to warm up " + uri + ": " + e.getMessage());
+                    } finally {
+                        if (completed.incrementAndGet() == total) {
+                            endTime = System.currentTimeMillis();
+                        }
+                    }
+                }
+            });
+        }
+        //queued URIs still run, the threads exit once the queue is drained instead of idling for the life of the webapp
+        this.executorService.shutdown();
+    }
+
+    private void warmUp(String uri) throws IOException, InterruptedException {
+        if (repository.has(Key.generateKey(uri))) {
+            present.incrementAndGet();
+        } else if (baseUrl != null) {
+            regenerate(uri);
+            regenerated.incrementAndGet();
+        } else {
+            skipped.incrementAndGet();
+        }
+    }
+
+    private void regenerate(String uri) throws IOException, InterruptedException {
+        long deadline = startTime + timeoutMillis;
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        while (true) {
+            try {
+                request(uri);
+                return;
+            } catch (ConnectException e) {
+                //the connector is not listening yet while the context starts
+                if (System.currentTimeMillis() + backoff > deadline) {
+                    throw e;
+                }
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private void request(String uri) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + uri).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestProperty(WARMUP_HEADER, "1");
+        try {
+            int status = connection.getResponseCode();
+            if (status >= 400) {
+                throw new IOException("status " + status);
+            }
+            InputStream in = connection.getInputStream();
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                //drain the body so the filter gets to store it
+            }
+            in.close();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return number of URIs handled so far, whatever the outcome
+     */
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return number of URIs that were already in the repository
+     */
+    public int getPresent() {
+        return present.get();
+    }
+
+    /**
+     * @return number of URIs regenerated through a request to the base URL
+     */
+    public int getRegenerated() {
+        return regenerated.get();
+    }
+
+    /**
+     * @return number of missing URIs left alone because no base URL is configured
+     */
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public boolean isDone() {
+        return startTime != 0 && endTime != 0;
+    }
+
+    /**
+     * @return time spent warming up so far, or in total once done; 0 before it started
+     */
+    public long getDurationMillis() {
+        if (startTime == 0) {
+            return 0;
+        }
+        return (endTime != 0 ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    public boolean awaitDone(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (!isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return isDone();
+    }
+
+    // true once the pool threads have exited, which they do by themselves after the warm-up
+    boolean isTerminated() {
+        return executorService.isTerminated();
+    }
+
+    public void shutdown() {
+        this.executorService.shutdownNow();
+    }
+}
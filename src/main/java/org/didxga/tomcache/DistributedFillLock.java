@@ -0,0 +1,98 @@
+package org.didxga.tomcache;
+
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Cluster-wide lease that lets a single node fill a missing cache entry.
+ *
+ * <p>The lease is a Redis key set with {@code SET NX PX} holding a random token, so it
+ * expires on its own if the holder dies. Release only deletes the lease when the token
+ * still matches, which keeps a slow holder from dropping a lease that has already been
+ * handed to another node. Commands go through the connections of the {@link RedisCacheRepository}
+ * the entries are stored in.
+ * </p>
+ */
+public class DistributedFillLock {
+
+    private static final String LOCK_PREFIX = "tomcache:fill:";
+
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
+    private RedisCacheRepository repository;
+    private long leaseMillis;
+    private long pollMillis;
+
+    public DistributedFillLock(RedisCacheRepository repository, long leaseMillis, long pollMillis) {
+        this.repository = repository;
+        this.leaseMillis = leaseMillis;
+        this.pollMillis = pollMillis;
+    }
+
+    /**
+     * Try to take the fill lease for the given key.
+     *
+     * @param key cache key about to be filled
+     * @return the lease token, or null if another node holds the lease or Redis is unreachable
+     */
+    public String tryAcquire(Key key) {
+        if (key == null) {
+            return null;
+        }
+        String token = UUID.randomUUID().toString();
+        try {
+            String reply = repository.execute(jedis -> jedis.set(lockKey(key), token, SetParams.setParams().nx().px(leaseMillis)));
+            return "OK".equals(reply) ? token : null;
+        } catch (JedisException e) {
+            System.err.println("Redis error during fill lock acquire: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Check whether some node still holds the fill lease for the given key.
+     * Returns false when Redis is unreachable so that waiters fall back to the origin.
+     */
+    public boolean isHeld(Key key) {
+        if (key == null) {
+            return false;
+        }
+        try {
+            return repository.execute(jedis -> jedis.exists(lockKey(key)));
+        } catch (JedisException e) {
+            System.err.println("Redis error during fill lock check: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Release the fill lease, but only if it is still owned by the given token.
+     */
+    public void release(Key key, String token) {
+        if (key == null || token == null) {
+            return;
+        }
+        try {
+            repository.execute(jedis -> jedis.eval(RELEASE_SCRIPT, Collections.singletonList(lockKey(key)), Collections.singletonList(token)));
+        } catch (JedisException e) {
+            // the lease expires on its own after leaseMillis
+            System.err.println("Redis error during fill lock release: " + e.getMessage());
+        }
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public long getPollMillis() {
+        return pollMillis;
+    }
+
+    private String lockKey(Key key) {
+        return LOCK_PREFIX + key.getUri();
+    }
+}
@@ -0,0 +1,249 @@
+package org.didxga.tomcache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of the most requested URIs and periodically writes them to a snapshot file.
+ *
+ * <p>Counting uses the Space-Saving sketch: at most {@code capacity} URIs are counted, and a
+ * URI that is not tracked yet takes over the slot of the least counted one, inheriting its
+ * count. Frequently requested URIs therefore stay tracked within a bounded amount of memory.
+ * Counters sit in buckets of equal count linked in ascending order (the Stream-Summary layout),
+ * so counting a request and evicting the least counted URI are both O(1).
+ * {@link #record(String)} runs on every request and never waits: under contention the request
+ * is simply not counted, which samples the traffic instead of serializing it.
+ * </p>
+ *
+ * <p>The least counted slots hold whichever cold URIs arrived last, with counts inherited from
+ * the URIs they displaced. Every counter therefore remembers the count it inherited, and only
+ * URIs whose guaranteed count (count minus inherited count) is above the lowest count in the
+ * sketch are reported: no URI that was not tracked can have been requested more often. Before
+ * the first displacement all counts are exact and every URI is reported.
+ * The snapshot holds the reported URIs, one per line, hottest first, and is read back by {@link CacheWarmer}.
+ * </p>
+ */
+public class HotKeyTracker {
+
+    private static class Bucket {
+        long count;
+        Bucket prev;
+        Bucket next;
+        Counter head;
+    }
+
+    private static class Counter {
+        String uri;
+        // count inherited from the URI this counter displaced, an upper bound on the overestimate
+        long error;
+        Bucket bucket;
+        Counter prev;
+        Counter next;
+    }
+
+    private int capacity;
+    private Map<String, Counter> counters;
+    // lowest and highest count bucket
+    private Bucket min;
+    private Bucket max;
+    // set once a URI has been displaced, from then on untracked URIs may have up to min.count requests
+    private boolean displaced;
+    private ReentrantLock lock = new ReentrantLock();
+    private Path snapshotFile;
+    private ScheduledExecutorService executorService;
+
+    public HotKeyTracker(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * @param capacity        number of URIs counted, at most that many are written to the snapshot
+     * @param snapshotFile    file the hottest URIs are written to
+     * @param intervalSeconds how often the snapshot is written
+     */
+    public HotKeyTracker(int capacity, Path snapshotFile, long intervalSeconds) {
+        this(capacity);
+        this.snapshotFile = snapshotFile;
+        this.executorService = Executors.newSingleThreadScheduledExecutor();
+        this.executorService.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshot();
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void record(String uri) {
+        if (uri == null || !lock.tryLock()) {
+            return;
+        }
+        try {
+            Counter counter = counters.get(uri);
+            if (counter == null) {
+                if (counters.size() < capacity) {
+                    counter = new Counter();
+                } else {
+                    counter = min.head;
+                    counters.remove(counter.uri);
+                    counter.error = min.count;
+                    displaced = true;
+                }
+                counter.uri = uri;
+                counters.put(uri, counter);
+            }
+            increment(counter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the URIs guaranteed to be requested more often than any URI not tracked, most requested first
+     */
+    public List<String> hottest() {
+        lock.lock();
+        try {
+            List<String> uris = new ArrayList<>(counters.size());
+            long threshold = displaced ? min.count : 0;
+            for (Bucket bucket = max; bucket != null; bucket = bucket.prev) {
+                for (Counter counter = bucket.head; counter != null; counter = counter.next) {
+                    if (counter.bucket.count - counter.error > threshold) {
+                        uris.add(counter.uri);
+                    }
+                }
+            }
+            return uris;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the hottest URIs to the snapshot file, replacing it atomically where the file system allows.
+     */
+    public void writeSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        List<String> uris = hottest();
+        try {
+            Path dir = snapshotFile.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, snapshotFile.getFileName().toString(), ".tmp");
+            Files.write(tmp, uris, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("HotKeyTracker: failed to write snapshot " + snapshotFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the URIs of a snapshot file, hottest first, or an empty list if there is none
+     */
+    public static List<String> readSnapshot(Path snapshotFile) {
+        if (snapshotFile == null || !Files.isRegularFile(snapshotFile)) {
+            return Collections.emptyList();
+        }
+        try {
+            List<String> uris = new ArrayList<>();
+            for (String line : Files.readAllLines(snapshotFile, StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    uris.add(line.trim());
+                }
+            }
+            return uris;
+        } catch (IOException e) {
+            System.err.println("HotKeyTracker: failed to read snapshot " + snapshotFile + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Stop the periodic snapshot and write a last one, so a restart warms up with the latest hot keys.
+     */
+    public void shutdown() {
+        if (executorService != null) {
+            this.executorService.shutdownNow();
+        }
+        writeSnapshot();
+    }
+
+    // move the counter to the bucket one count up, a new counter starts at one
+    private void increment(Counter counter) {
+        Bucket from = counter.bucket;
+        long count = from == null ? 1 : from.count + 1;
+        Bucket to = from == null ? min : from.next;
+        if (to == null || to.count != count) {
+            Bucket bucket = new Bucket();
+            bucket.count = count;
+            bucket.prev = from;
+            bucket.next = to;
+            if (from != null) {
+                from.next = bucket;
+            } else {
+                min = bucket;
+            }
+            if (to != null) {
+                to.prev = bucket;
+            } else {
+                max = bucket;
+            }
+            to = bucket;
+        }
+        if (from != null) {
+            unlink(counter);
+        }
+        counter.bucket = to;
+        counter.next = to.head;
+        if (to.head != null) {
+            to.head.prev = counter;
+        }
+        to.head = counter;
+    }
+
+    // take the counter out of its bucket, dropping the bucket once it is empty
+    private void unlink(Counter counter) {
+        Bucket bucket = counter.bucket;
+        if (counter.prev != null) {
+            counter.prev.next = counter.next;
+        } else {
+            bucket.head = counter.next;
+        }
+        if (counter.next != null) {
+            counter.next.prev = counter.prev;
+        }
+        counter.prev = null;
+        counter.next = null;
+        counter.bucket = null;
+        if (bucket.head == null) {
+            if (bucket.prev != null) {
+                bucket.prev.next = bucket.next;
+            } else {
+                min = bucket.next;
+            }
+            if (bucket.next != null) {
+                bucket.next.prev = bucket.prev;
+            } else {
+                max = bucket.prev;
+            }
+        }
+    }
+}
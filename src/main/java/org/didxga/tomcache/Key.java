@@ -21,6 +21,10 @@ public class Key {
         return key;
     }
 
+    public String getUri() {
+        return uri;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
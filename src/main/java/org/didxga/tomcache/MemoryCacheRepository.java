@@ -1,24 +1,66 @@
 package org.didxga.tomcache;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MemoryCacheRepository implements CacheRepository {
 
-    protected Map<Key, Value> cache = new HashMap<>();
+    // request threads store and retrieve concurrently while the StaleDataWatcher evicts
+    protected Map<Key, Value> cache = new ConcurrentHashMap<>();
+    // only set in deduplicating mode
+    protected BodyStore bodies;
+
+    public MemoryCacheRepository() {
+    }
+
+    /**
+     * @param deduplicate when true, identical bodies are stored once and shared between keys
+     */
+    public MemoryCacheRepository(boolean deduplicate) {
+        if (deduplicate) {
+            this.bodies = new BodyStore();
+        }
+    }
 
     @Override
     public void store(Key key, Value value) {
-        this.cache.put(key, value);
+        if (key == null || value == null || value.body == null) {
+            // nothing was captured as text, e.g. the body went through getOutputStream
+            return;
+        }
+        if (bodies != null) {
+            value.body = bodies.acquire(value.body);
+        }
+        release(this.cache.put(key, value));
     }
 
     @Override
     public Value retrieve(Key key) {
-        return cache.get(key);
+        return key == null ? null : cache.get(key);
     }
 
     @Override
     public boolean has(Key key) {
-        return cache.containsKey(key);
+        return key != null && cache.containsKey(key);
+    }
+
+    /**
+     * Give back the body of a value that has been removed from the cache.
+     */
+    protected void release(Value value) {
+        if (bodies != null && value != null && value.body != null) {
+            bodies.release(value.body);
+        }
+    }
+
+    public boolean isDeduplicating() {
+        return bodies != null;
+    }
+
+    /**
+     * @return size of the bodies of all live entries divided by the memory they actually take, 1.0 without dedup
+     */
+    public double getDedupRatio() {
+        return bodies == null ? 1.0 : bodies.getDedupRatio();
     }
 }
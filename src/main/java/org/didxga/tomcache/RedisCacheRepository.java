@@ -1,25 +1,88 @@
 package org.didxga.tomcache;
 
+import redis.clients.jedis.ConnectionPoolConfig;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.commands.JedisCommands;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 public class RedisCacheRepository implements CacheRepository {
 
+    // Deduplicating mode keeps a pointer per URI that names a body by its SHA-256, so identical
+    // payloads are stored once. Bodies are not reference counted: pointers expire on their own,
+    // so a count could never be kept exact. Instead every body and pointer has a TTL, and a body
+    // lives BODY_TTL_MARGIN_MILLIS longer than the longest living pointer stored to it.
+    private static final String REF_PREFIX = "tomcache:ref:";
+    private static final String BODY_PREFIX = "tomcache:body:";
+    // used for entries without an expiry date, so that no body stays in Redis forever
+    private static final long DEDUP_DEFAULT_TTL_SECONDS = 24 * 60 * 60;
+    // The pointer is set one command after the body, its TTL starts counting later. The margin
+    // covers that gap, including the wait for a second pooled connection (maxWait of the default pool).
+    private static final long BODY_TTL_MARGIN_MILLIS = 5000;
+
+    // KEYS: body. ARGV: body, ttl in milliseconds.
+    // Stores the body if it is new and extends its TTL to at least ttl. Returns 1 when the body was newly stored.
+    // PTTL rather than TTL: TTL rounds to the second and would leave the body up to a second short.
+    private static final String DEDUP_BODY_SCRIPT =
+            "local created = redis.call('setnx', KEYS[1], ARGV[1]) " +
+            "local ttl = tonumber(ARGV[2]) " +
+            "if created == 1 or redis.call('pttl', KEYS[1]) < ttl then " +
+            "  redis.call('pexpire', KEYS[1], ttl) " +
+            "end " +
+            "return created";
+
+    // Exactly one of the two is set. The pooled client borrows a connection per command and is
+    // safe to share between request threads; a single Jedis connection is not, so access to it is serialized.
+    private JedisPooled pool;
     private Jedis jedis;
+    private boolean deduplicate;
+    // sizes of the bodies written through this repository, and of those that were new to Redis, see getWriteDedupRatio
+    private AtomicLong logicalSize = new AtomicLong();
+    private AtomicLong storedSize = new AtomicLong();
 
     public RedisCacheRepository() {
-        // Default connection to localhost:6379
+        // Default connection pool to localhost:6379
         // In a production scenario, host and port should be configurable.
-        this(new Jedis("localhost", 6379));
+        this(new JedisPooled(defaultPoolConfig(), "localhost", 6379));
+    }
+
+    // Constructor for allowing a custom pooled client (e.g., for specific configurations)
+    public RedisCacheRepository(JedisPooled pool) {
+        this.pool = pool;
+        checkConnection();
     }
 
     // Constructor for allowing custom Jedis instance (e.g., for testing or specific configurations)
+    // All commands go through this single connection one at a time.
     public RedisCacheRepository(Jedis jedis) {
         this.jedis = jedis;
+        checkConnection();
+    }
+
+    private static ConnectionPoolConfig defaultPoolConfig() {
+        ConnectionPoolConfig config = new ConnectionPoolConfig();
+        config.setMaxTotal(64);
+        // fail the command instead of blocking the request thread forever when the pool is exhausted
+        config.setMaxWait(Duration.ofSeconds(2));
+        return config;
+    }
+
+    private void checkConnection() {
         try {
             // Check connection
-            this.jedis.ping(); 
-        } catch (JedisConnectionException e) {
+            if (pool != null) {
+                pool.ping();
+            } else {
+                jedis.ping();
+            }
+        } catch (JedisException e) {
             // Handle connection error appropriately
             // For now, we'll print an error and the application might not work as expected
             // A more robust solution would involve retries, fallback mechanisms, or specific error handling
@@ -34,6 +97,10 @@ public class RedisCacheRepository implements CacheRepository {
             // Avoid storing null keys or values, or values with null body
             return; 
         }
+        if (deduplicate) {
+            storeDeduplicated(key, value);
+            return;
+        }
         try {
             // Using key.getUri() as the Redis key.
             // Serializing the Value object. For simplicity, storing body directly.
@@ -41,12 +108,15 @@ public class RedisCacheRepository implements CacheRepository {
             // For now, we assume Value.body is a String.
             // If Value.body can be other types, proper serialization (JSON, Java serialization) is needed.
             String redisKey = key.getUri();
-            jedis.set(redisKey, value.body); // Storing only the body for now
-            if (key.dueDate != null) { // Accessing dueDate field directly
-                long expireTimestamp = key.dueDate.getTime() / 1000; // Convert Date to UNIX timestamp in seconds
-                jedis.expireAt(redisKey, expireTimestamp);
-            }
-        } catch (JedisConnectionException e) {
+            execute(jedis -> {
+                jedis.set(redisKey, value.body); // Storing only the body for now
+                if (key.dueDate != null) { // Accessing dueDate field directly
+                    long expireTimestamp = key.dueDate.getTime() / 1000; // Convert Date to UNIX timestamp in seconds
+                    jedis.expireAt(redisKey, expireTimestamp);
+                }
+                return null;
+            });
+        } catch (JedisException e) {
             System.err.println("Redis error during store: " + e.getMessage());
             // Consider error handling strategy: retry, log, throw exception
         }
@@ -59,7 +129,13 @@ public class RedisCacheRepository implements CacheRepository {
         }
         try {
             String redisKey = key.getUri();
-            String body = jedis.get(redisKey);
+            String body = execute(jedis -> {
+                if (!deduplicate) {
+                    return jedis.get(redisKey);
+                }
+                String hash = jedis.get(REF_PREFIX + redisKey);
+                return hash == null ? null : jedis.get(BODY_PREFIX + hash);
+            });
             if (body != null) {
                 Value value = new Value();
                 value.body = body;
@@ -69,7 +145,7 @@ public class RedisCacheRepository implements CacheRepository {
             } else {
                 return null;
             }
-        } catch (JedisConnectionException e) {
+        } catch (JedisException e) {
             System.err.println("Redis error during retrieve: " + e.getMessage());
             // Consider error handling strategy
             return null;
@@ -82,17 +158,77 @@ public class RedisCacheRepository implements CacheRepository {
             return false;
         }
         try {
-            String redisKey = key.getUri();
-            return jedis.exists(redisKey);
-        } catch (JedisConnectionException e) {
+            String redisKey = deduplicate ? REF_PREFIX + key.getUri() : key.getUri();
+            return execute(jedis -> jedis.exists(redisKey));
+        } catch (JedisException e) {
             System.err.println("Redis error during has: " + e.getMessage());
             // Consider error handling strategy
             return false;
         }
     }
 
+    private void storeDeduplicated(Key key, Value value) {
+        String hash = Util.sha256Hex(value.body);
+        // at least one second, EXPIRE with 0 would delete the key right away
+        long ttl = key.dueDate == null
+                ? DEDUP_DEFAULT_TTL_SECONDS
+                : Math.max(1, (key.dueDate.getTime() - System.currentTimeMillis() + 999) / 1000);
+        try {
+            // the body goes first and is kept a margin longer than the pointer, so a pointer never names a missing body
+            long bodyTtlMillis = ttl * 1000 + BODY_TTL_MARGIN_MILLIS;
+            Object created = execute(jedis -> {
+                Object bodyCreated = jedis.eval(DEDUP_BODY_SCRIPT,
+                        Collections.singletonList(BODY_PREFIX + hash),
+                        Arrays.asList(value.body, String.valueOf(bodyTtlMillis)));
+                jedis.set(REF_PREFIX + key.getUri(), hash, SetParams.setParams().ex(ttl));
+                return bodyCreated;
+            });
+            logicalSize.addAndGet(value.body.length());
+            if (Long.valueOf(1L).equals(created)) {
+                storedSize.addAndGet(value.body.length());
+            }
+        } catch (JedisException e) {
+            System.err.println("Redis error during store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Store bodies by content hash so that keys with identical bodies share one copy in Redis.
+     * Switch it before the first store, entries written in the other mode are not visible.
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * Write dedup ratio: size of the bodies this node wrote in deduplicating mode divided by
+     * the size of those that were new to Redis, 1.0 when nothing has been written.
+     * It counts writes since startup, not live memory. Expired or replaced entries are never
+     * subtracted, and a body another node stored first counts as saved here.
+     */
+    public double getWriteDedupRatio() {
+        long stored = storedSize.get();
+        return stored == 0 ? 1.0 : (double) logicalSize.get() / stored;
+    }
+
+    /**
+     * Run commands against Redis, on a pooled connection or serialized on the single one.
+     * The fill lock goes through here too, so it shares the connections of the repository.
+     */
+    <T> T execute(Function<JedisCommands, T> commands) {
+        if (pool != null) {
+            return commands.apply(pool);
+        }
+        synchronized (jedis) {
+            return commands.apply(jedis);
+        }
+    }
+
     // Optional: Method to close the Jedis connection when the repository is no longer needed.
     public void close() {
+        if (pool != null) {
+            pool.close();
+        }
         if (jedis != null) {
             jedis.close();
         }
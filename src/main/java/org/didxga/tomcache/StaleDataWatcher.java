@@ -2,6 +2,7 @@ package org.didxga.tomcache;
 
 import java.util.Date;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -17,18 +18,26 @@ public class StaleDataWatcher {
         this.executorService.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
-                Iterator<Key> keys = repository.cache.keySet().iterator();
-                Date now = new Date();
-                while (keys.hasNext()) {
-                  Key key = keys.next();
-                  if(key.dueDate.before(now)) {
-                      keys.remove();
-                  }
-                }
+                evictExpired();
             }
         }, 60, 60, TimeUnit.SECONDS);
     }
 
+    void evictExpired() {
+        Iterator<Map.Entry<Key, Value>> entries = repository.cache.entrySet().iterator();
+        Date now = new Date();
+        while (entries.hasNext()) {
+          Map.Entry<Key, Value> entry = entries.next();
+          //entries without expiry stay; an exception here would cancel all later runs
+          if(entry.getKey().dueDate != null && entry.getKey().dueDate.before(now)) {
+              //only evict the value we looked at, a store may have replaced it meanwhile and released it already
+              if (repository.cache.remove(entry.getKey(), entry.getValue())) {
+                  repository.release(entry.getValue());
+              }
+          }
+        }
+    }
+
     public void shutdown() {
         this.executorService.shutdownNow();
     }
@@ -4,16 +4,38 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 
 @SuppressWarnings("unused")
 public class TomcacheFilter implements Filter {
 
-    private CacheRepository cacheRepository = new RedisCacheRepository();
+    private static final long DEFAULT_FILL_LOCK_LEASE_MILLIS = 5000;
+    private static final long DEFAULT_FILL_LOCK_POLL_MILLIS = 50;
+    private static final long DEFAULT_HOT_KEY_CAPACITY = 256;
+    private static final long DEFAULT_HOT_KEY_SNAPSHOT_INTERVAL_SECONDS = 60;
+    private static final long DEFAULT_WARMUP_THREADS = 4;
+    private static final long DEFAULT_WARMUP_TIMEOUT_SECONDS = CacheWarmer.DEFAULT_TIMEOUT_MILLIS / 1000;
+
+    private CacheRepository cacheRepository;
     private StaleDataWatcher staleDataWatcher;
+    private DistributedFillLock fillLock;
+    private HotKeyTracker hotKeyTracker;
+    private CacheWarmer cacheWarmer;
+
+    public TomcacheFilter() {
+        this(new RedisCacheRepository());
+    }
+
+    // Constructor for allowing a custom repository (e.g., for testing or embedded containers)
+    public TomcacheFilter(CacheRepository cacheRepository) {
+        this.cacheRepository = cacheRepository;
+    }
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
@@ -26,6 +48,52 @@ public class TomcacheFilter implements Filter {
             System.err.println("TomcacheFilter: StaleDataWatcher is not compatible with the current CacheRepository implementation (" + cacheRepository.getClass().getName() + ") and will not be initialized.");
             staleDataWatcher = null;
         }
+
+        //store identical bodies once, addressed by content hash
+        if (filterConfig != null && Boolean.parseBoolean(filterConfig.getInitParameter("dedup"))) {
+            if (cacheRepository instanceof RedisCacheRepository) {
+                ((RedisCacheRepository) cacheRepository).setDeduplicate(true);
+            } else if (cacheRepository instanceof MemoryCacheRepository) {
+                if (!((MemoryCacheRepository) cacheRepository).isDeduplicating()) {
+                    System.err.println("TomcacheFilter: dedup of a MemoryCacheRepository is chosen when it is constructed, use new MemoryCacheRepository(true), dedup stays off.");
+                }
+            } else {
+                System.err.println("TomcacheFilter: dedup is not supported by the current CacheRepository implementation (" + cacheRepository.getClass().getName() + ").");
+            }
+        }
+        //published so the dedup ratio and the like can be read from within the webapp
+        if (filterConfig != null && filterConfig.getServletContext() != null) {
+            filterConfig.getServletContext().setAttribute(CacheRepository.CONTEXT_ATTRIBUTE, cacheRepository);
+        }
+
+        //the fill lock is opt-in: only one node in the cluster fills a missing key, the others wait for its result
+        if (filterConfig != null && Boolean.parseBoolean(filterConfig.getInitParameter("fillLock"))) {
+            if (cacheRepository instanceof RedisCacheRepository) {
+                long leaseMillis = getLongParameter(filterConfig, "fillLockLeaseMillis", DEFAULT_FILL_LOCK_LEASE_MILLIS);
+                long pollMillis = getLongParameter(filterConfig, "fillLockPollMillis", DEFAULT_FILL_LOCK_POLL_MILLIS);
+                fillLock = new DistributedFillLock((RedisCacheRepository) cacheRepository, leaseMillis, pollMillis);
+            } else {
+                System.err.println("TomcacheFilter: fill lock requires a RedisCacheRepository, current implementation is " + cacheRepository.getClass().getName() + ", fill lock will not be initialized.");
+                fillLock = null;
+            }
+        }
+
+        //record the hottest keys to a snapshot and warm the cache up from the previous one
+        String snapshot = filterConfig == null ? null : filterConfig.getInitParameter("hotKeySnapshot");
+        if (snapshot != null) {
+            Path snapshotFile = Paths.get(snapshot);
+            List<String> hottest = HotKeyTracker.readSnapshot(snapshotFile);
+            int threads = (int) getLongParameter(filterConfig, "warmupThreads", DEFAULT_WARMUP_THREADS);
+            long timeout = getLongParameter(filterConfig, "warmupTimeoutSeconds", DEFAULT_WARMUP_TIMEOUT_SECONDS);
+            //init runs before the connector listens, the warmer retries refused regeneration requests until the timeout
+            cacheWarmer = new CacheWarmer(cacheRepository, filterConfig.getInitParameter("warmupBaseUrl"), Math.max(1, threads), timeout * 1000);
+            filterConfig.getServletContext().setAttribute(CacheWarmer.CONTEXT_ATTRIBUTE, cacheWarmer);
+            cacheWarmer.warmUp(hottest);
+
+            int capacity = (int) getLongParameter(filterConfig, "hotKeyCapacity", DEFAULT_HOT_KEY_CAPACITY);
+            long interval = getLongParameter(filterConfig, "hotKeySnapshotIntervalSeconds", DEFAULT_HOT_KEY_SNAPSHOT_INTERVAL_SECONDS);
+            hotKeyTracker = new HotKeyTracker(Math.max(1, capacity), snapshotFile, Math.max(1, interval));
+        }
     }
 
     @Override
@@ -35,49 +103,124 @@ public class TomcacheFilter implements Filter {
         String uri = Util.getURI(httpServletRequest);
         Key key = Key.generateKey(uri);
         Value value;
+        if (hotKeyTracker != null && httpServletRequest.getHeader(CacheWarmer.WARMUP_HEADER) == null) {
+            hotKeyTracker.record(uri);
+        }
         if(cacheRepository.has(key)) {
             //when hit cache, we get the cache from cache repository and break the filter chain by return directly
 
             value =  cacheRepository.retrieve(key);
-            if(value == null) {
-                //check to make sure cache is not removed upon the time we getting it from repository
+            if(value != null) {
+                serve(value, httpServletResponse);
                 return;
             }
-            httpServletResponse.getWriter().write(value.body);
-            if(value.headers !=null && value.headers.size() > 0) {
-                Iterator<String> keys = value.headers.keySet().iterator();
-                while(keys.hasNext()) {
-                    String k = keys.next();
-                    httpServletResponse.setHeader(k, value.headers.get(k));
-                }
-            }
-            return;
+            //the entry expired or was evicted between has and retrieve, handle it as a miss
+        }
+        if (fillLock == null) {
+            fill(uri, servletRequest, servletResponse, filterChain);
         } else {
-            //when cache is missing, we pass the request to the filter chain and cache later when process return from filter chain
-            TomcacheResponse tomcacheResponse = new TomcacheResponse(servletResponse);
-            filterChain.doFilter(servletRequest, tomcacheResponse);
-
-            Date expireDate = Util.getExpirationDate(httpServletResponse);
-            key = key.generateKey(uri, expireDate);
-            value = new Value();
-            value.body = ((TomcacheWriter)tomcacheResponse.getWriter()).getCopy();
-            Collection<String> headerNames =  httpServletResponse.getHeaderNames();
-            if (headerNames !=null && headerNames.size() > 0) {
-                value.headers = new HashMap<>(headerNames.size());
-                for(String headerName : headerNames) {
-                    value.headers.put(headerName, httpServletResponse.getHeader(headerName));
+            //only the lease holder goes to the origin, everyone else waits for the entry it stores
+            String token = fillLock.tryAcquire(key);
+            if (token != null) {
+                try {
+                    fill(uri, servletRequest, servletResponse, filterChain);
+                } finally {
+                    fillLock.release(key, token);
                 }
+                return;
+            }
+            value = awaitFill(key);
+            if (value != null) {
+                serve(value, httpServletResponse);
+                return;
             }
-            cacheRepository.store(key, value);
+            //lease holder died or the lease timed out without producing the entry, go to the origin ourselves
+            fill(uri, servletRequest, servletResponse, filterChain);
         }
 
     }
 
+    private void serve(Value value, HttpServletResponse httpServletResponse) throws IOException {
+        httpServletResponse.getWriter().write(value.body);
+        if(value.headers !=null && value.headers.size() > 0) {
+            Iterator<String> keys = value.headers.keySet().iterator();
+            while(keys.hasNext()) {
+                String k = keys.next();
+                httpServletResponse.setHeader(k, value.headers.get(k));
+            }
+        }
+    }
+
+    private void fill(String uri, ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
+        //when cache is missing, we pass the request to the filter chain and cache later when process return from filter chain
+        HttpServletResponse httpServletResponse = (HttpServletResponse) servletResponse;
+        TomcacheResponse tomcacheResponse = new TomcacheResponse(httpServletResponse);
+        filterChain.doFilter(servletRequest, tomcacheResponse);
+
+        Date expireDate = Util.getExpirationDate(httpServletResponse);
+        Key key = Key.generateKey(uri, expireDate);
+        Value value = new Value();
+        value.body = ((TomcacheWriter)tomcacheResponse.getWriter()).getCopy();
+        Collection<String> headerNames =  httpServletResponse.getHeaderNames();
+        if (headerNames !=null && headerNames.size() > 0) {
+            value.headers = new HashMap<>(headerNames.size());
+            for(String headerName : headerNames) {
+                value.headers.put(headerName, httpServletResponse.getHeader(headerName));
+            }
+        }
+        cacheRepository.store(key, value);
+    }
+
+    /**
+     * Poll the repository while another node holds the fill lease.
+     *
+     * @return the entry stored by the lease holder, or null if the lease was dropped or timed out without one
+     */
+    private Value awaitFill(Key key) {
+        long deadline = System.currentTimeMillis() + fillLock.getLeaseMillis();
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(fillLock.getPollMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            Value value = cacheRepository.retrieve(key);
+            if (value != null) {
+                return value;
+            }
+            if (!fillLock.isHeld(key)) {
+                //the holder may have stored the entry right before releasing the lease
+                return cacheRepository.retrieve(key);
+            }
+        }
+        return null;
+    }
+
+    private static long getLongParameter(FilterConfig filterConfig, String name, long defaultValue) {
+        String value = filterConfig.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("TomcacheFilter: invalid value for " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
     @Override
     public void destroy() {
         if (staleDataWatcher != null) {
             staleDataWatcher.shutdown();
         }
+        if (cacheWarmer != null) {
+            cacheWarmer.shutdown();
+        }
+        if (hotKeyTracker != null) {
+            hotKeyTracker.shutdown();
+        }
         if (cacheRepository instanceof RedisCacheRepository) {
             ((RedisCacheRepository) cacheRepository).close();
         }
@@ -1,23 +1,31 @@
 package org.didxga.tomcache;
 
-import javax.servlet.ServletResponse;
-import javax.servlet.ServletResponseWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 import java.io.IOException;
 import java.io.PrintWriter;
 
-public class TomcacheResponse extends ServletResponseWrapper {
+public class TomcacheResponse extends HttpServletResponseWrapper {
+
+    private TomcacheWriter writer;
+
     /**
-     * Creates a ServletResponse adaptor wrapping the given response object.
+     * Creates a HttpServletResponse adaptor wrapping the given response object.
+     * HTTP servlets down the chain refuse a response that is not a {@link HttpServletResponse}.
      *
-     * @param response the {@link ServletResponse} to be wrapped
+     * @param response the {@link HttpServletResponse} to be wrapped
      * @throws IllegalArgumentException if the response is null.
      */
-    public TomcacheResponse(ServletResponse response) {
+    public TomcacheResponse(HttpServletResponse response) {
         super(response);
     }
 
     @Override
     public PrintWriter getWriter() throws IOException {
-        return  new TomcacheWriter(super.getWriter());
+        //hand out the same writer every time, the filter reads the copy from it after the chain returns
+        if (writer == null) {
+            writer = new TomcacheWriter(super.getWriter());
+        }
+        return writer;
     }
 }
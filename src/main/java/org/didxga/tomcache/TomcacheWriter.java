@@ -4,7 +4,7 @@ import java.io.*;
 
 public class TomcacheWriter extends PrintWriter {
 
-    private String copy;
+    private StringBuilder copy;
 
     public TomcacheWriter(Writer out) {
         super(out);
@@ -38,13 +38,45 @@ public class TomcacheWriter extends PrintWriter {
         super(file, csn);
     }
 
+    //print and write(String) both end up here, so the copy holds everything written as text
     @Override
-    public void write(String s) {
-        copy = s;
-        super.write(s);
+    public void write(String s, int off, int len) {
+        if (copy == null) {
+            copy = new StringBuilder(len);
+        }
+        copy.append(s, off, off + len);
+        super.write(s, off, len);
+    }
+
+    @Override
+    public void write(char[] buf, int off, int len) {
+        if (copy == null) {
+            copy = new StringBuilder(len);
+        }
+        copy.append(buf, off, len);
+        super.write(buf, off, len);
+    }
+
+    @Override
+    public void write(int c) {
+        if (copy == null) {
+            copy = new StringBuilder();
+        }
+        copy.append((char) c);
+        super.write(c);
+    }
+
+    //println writes the line separator straight to the underlying writer, bypassing the methods above
+    @Override
+    public void println() {
+        if (copy == null) {
+            copy = new StringBuilder();
+        }
+        copy.append(System.lineSeparator());
+        super.println();
     }
 
     public String getCopy() {
-        return this.copy;
+        return copy == null ? null : copy.toString();
     }
 }
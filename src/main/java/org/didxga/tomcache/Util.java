@@ -2,6 +2,9 @@ package org.didxga.tomcache;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.regex.Matcher;
@@ -20,6 +23,26 @@ public class Util {
         return req.getRequestURI();
     }
 
+    /**
+     * Hex encoded SHA-256 of the UTF-8 bytes of the given string, used to address bodies by content
+     */
+    public static String sha256Hex(String str) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(str.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
     public static Date getExpirationDate(HttpServletResponse resp) {
         String cache_control = resp.getHeader("Cache-Control");
         String[] cache_operands;
@@ -0,0 +1,113 @@
+package org.didxga.tomcache;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class CacheWarmerTest {
+
+    @Test
+    public void testWarmUp_WithoutBaseUrlOnlyCounts() throws Exception {
+        CacheRepository repository = mock(CacheRepository.class);
+        when(repository.has(Key.generateKey("/a"))).thenReturn(true);
+        when(repository.has(Key.generateKey("/b"))).thenReturn(false);
+        CacheWarmer warmer = new CacheWarmer(repository, null, 2);
+
+        warmer.warmUp(Arrays.asList("/a", "/b"));
+
+        assertTrue(warmer.awaitDone(5, TimeUnit.SECONDS));
+        assertEquals(2, warmer.getTotal());
+        assertEquals(2, warmer.getCompleted());
+        assertEquals(1, warmer.getPresent());
+        assertEquals(1, warmer.getSkipped());
+        assertEquals(0, warmer.getRegenerated());
+        assertEquals(0, warmer.getFailed());
+        verify(repository, never()).retrieve(any());
+        warmer.shutdown();
+    }
+
+    @Test
+    public void testWarmUp_ReleasesThreadsWhenDone() throws Exception {
+        CacheRepository repository = mock(CacheRepository.class);
+        when(repository.has(any())).thenReturn(true);
+        CacheWarmer warmer = new CacheWarmer(repository, null, 4);
+
+        warmer.warmUp(Arrays.asList("/a", "/b", "/c", "/d", "/e", "/f"));
+
+        assertTrue(warmer.awaitDone(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!warmer.isTerminated() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(warmer.isTerminated());
+        assertEquals(6, warmer.getPresent());
+    }
+
+    @Test
+    public void testWarmUp_RetriesUntilServerListens() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        CacheRepository repository = mock(CacheRepository.class);
+        CacheWarmer warmer = new CacheWarmer(repository, "http://127.0.0.1:" + port, 1, 10000);
+
+        // like Filter.init, the warm-up starts before the connector accepts connections
+        warmer.warmUp(Collections.singletonList("/a"));
+        Thread.sleep(300);
+        assertFalse(warmer.isDone());
+
+        AtomicReference<String> warmupHeader = new AtomicReference<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/", exchange -> {
+            warmupHeader.set(exchange.getRequestHeaders().getFirst(CacheWarmer.WARMUP_HEADER));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            assertTrue(warmer.awaitDone(10, TimeUnit.SECONDS));
+        } finally {
+            server.stop(0);
+            warmer.shutdown();
+        }
+        assertEquals(1, warmer.getRegenerated());
+        assertEquals(0, warmer.getFailed());
+        assertEquals("1", warmupHeader.get());
+    }
+
+    @Test
+    public void testWarmUp_FailsAfterTimeout() throws Exception {
+        CacheRepository repository = mock(CacheRepository.class);
+        // nothing listens on port 1, so the regeneration request is refused until the timeout
+        CacheWarmer warmer = new CacheWarmer(repository, "http://127.0.0.1:1", 1, 200);
+
+        warmer.warmUp(Collections.singletonList("/a"));
+
+        assertTrue(warmer.awaitDone(5, TimeUnit.SECONDS));
+        assertEquals(1, warmer.getFailed());
+        assertEquals(0, warmer.getRegenerated());
+        warmer.shutdown();
+    }
+
+    @Test
+    public void testWarmUp_EmptySnapshotIsDone() {
+        CacheWarmer warmer = new CacheWarmer(mock(CacheRepository.class), null, 1);
+        assertFalse(warmer.isDone());
+
+        warmer.warmUp(Collections.<String>emptyList());
+
+        assertTrue(warmer.isDone());
+        assertEquals(0, warmer.getDurationMillis());
+        warmer.shutdown();
+    }
+}
@@ -0,0 +1,79 @@
+package org.didxga.tomcache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.params.SetParams;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DistributedFillLockTest {
+
+    @Mock
+    private Jedis mockJedis;
+
+    private DistributedFillLock fillLock;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        fillLock = new DistributedFillLock(new RedisCacheRepository(mockJedis), 5000, 10);
+    }
+
+    @Test
+    public void testTryAcquire_Success() {
+        Key key = Key.generateKey("test/uri");
+        when(mockJedis.set(eq("tomcache:fill:test/uri"), anyString(), any(SetParams.class))).thenReturn("OK");
+
+        String token = fillLock.tryAcquire(key);
+
+        assertNotNull(token);
+        verify(mockJedis).set(eq("tomcache:fill:test/uri"), eq(token), any(SetParams.class));
+    }
+
+    @Test
+    public void testTryAcquire_HeldByOtherNode() {
+        Key key = Key.generateKey("test/uri");
+        when(mockJedis.set(eq("tomcache:fill:test/uri"), anyString(), any(SetParams.class))).thenReturn(null);
+
+        assertNull(fillLock.tryAcquire(key));
+    }
+
+    @Test
+    public void testTryAcquire_JedisConnectionException() {
+        Key key = Key.generateKey("test/uri");
+        when(mockJedis.set(anyString(), anyString(), any(SetParams.class))).thenThrow(new JedisConnectionException("Connection failed"));
+
+        assertNull(fillLock.tryAcquire(key));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRelease_OnlyWithToken() {
+        Key key = Key.generateKey("test/uri");
+
+        fillLock.release(key, "token-1");
+
+        verify(mockJedis).eval(anyString(), eq(Collections.singletonList("tomcache:fill:test/uri")), eq(Collections.singletonList("token-1")));
+
+        fillLock.release(key, null);
+        verify(mockJedis, times(1)).eval(anyString(), any(List.class), any(List.class));
+    }
+
+    @Test
+    public void testIsHeld() {
+        Key key = Key.generateKey("test/uri");
+        when(mockJedis.exists("tomcache:fill:test/uri")).thenReturn(true);
+        assertTrue(fillLock.isHeld(key));
+
+        when(mockJedis.exists("tomcache:fill:test/uri")).thenThrow(new JedisConnectionException("Connection failed"));
+        assertFalse(fillLock.isHeld(key));
+    }
+}
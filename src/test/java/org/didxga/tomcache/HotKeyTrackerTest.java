@@ -0,0 +1,96 @@
+package org.didxga.tomcache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HotKeyTrackerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHottest_OrderedByCount() {
+        HotKeyTracker tracker = new HotKeyTracker(10);
+        for (int i = 0; i < 3; i++) tracker.record("/b");
+        for (int i = 0; i < 5; i++) tracker.record("/a");
+        tracker.record("/c");
+
+        assertEquals(Arrays.asList("/a", "/b", "/c"), tracker.hottest());
+    }
+
+    @Test
+    public void testRecord_BoundedKeepsHotKeys() {
+        HotKeyTracker tracker = new HotKeyTracker(2);
+        for (int i = 0; i < 100; i++) {
+            tracker.record("/hot");
+            tracker.record("/hot");
+            tracker.record("/cold/" + i);
+        }
+
+        // the other slot holds the last cold URI with an inherited count, it is not reported
+        assertEquals(Collections.singletonList("/hot"), tracker.hottest());
+    }
+
+    @Test
+    public void testHottest_KeepsGuaranteedKeysOfLongTail() {
+        HotKeyTracker tracker = new HotKeyTracker(8);
+        for (int i = 0; i < 1000; i++) {
+            tracker.record("/a");
+            if (i % 2 == 0) {
+                tracker.record("/b");
+            }
+            tracker.record("/tail/" + i);
+        }
+
+        assertEquals(Arrays.asList("/a", "/b"), tracker.hottest());
+    }
+
+    @Test
+    public void testRecord_Concurrent() throws Exception {
+        final HotKeyTracker tracker = new HotKeyTracker(50);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    tracker.record(i % 4 == 0 ? "/hot" : "/cold/" + ((i * 31 + seed) % 1000));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<String> hottest = tracker.hottest();
+        assertEquals(hottest.size(), new HashSet<>(hottest).size());
+        assertEquals("/hot", hottest.get(0));
+    }
+
+    @Test
+    public void testSnapshot_RoundTrip() throws Exception {
+        Path snapshot = folder.getRoot().toPath().resolve("hot-keys.txt");
+        HotKeyTracker tracker = new HotKeyTracker(10, snapshot, 3600);
+        tracker.record("/b");
+        tracker.record("/a");
+        tracker.record("/a");
+
+        tracker.shutdown();
+
+        assertEquals(Arrays.asList("/a", "/b"), HotKeyTracker.readSnapshot(snapshot));
+    }
+
+    @Test
+    public void testReadSnapshot_Missing() {
+        assertTrue(HotKeyTracker.readSnapshot(folder.getRoot().toPath().resolve("missing.txt")).isEmpty());
+    }
+}
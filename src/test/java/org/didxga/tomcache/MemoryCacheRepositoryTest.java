@@ -0,0 +1,85 @@
+package org.didxga.tomcache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MemoryCacheRepositoryTest {
+
+    private static Value value(String body) {
+        Value value = new Value();
+        value.body = body;
+        return value;
+    }
+
+    @Test
+    public void testStore_DeduplicatedSharesBody() {
+        MemoryCacheRepository repository = new MemoryCacheRepository(true);
+
+        repository.store(Key.generateKey("test/a"), value(new String("Shared Body")));
+        repository.store(Key.generateKey("test/b"), value(new String("Shared Body")));
+
+        assertSame(repository.retrieve(Key.generateKey("test/a")).body, repository.retrieve(Key.generateKey("test/b")).body);
+        assertEquals(1, repository.bodies.size());
+        assertEquals(2.0, repository.getDedupRatio(), 0.0001);
+    }
+
+    @Test
+    public void testStore_ReplacedBodyIsReleased() {
+        MemoryCacheRepository repository = new MemoryCacheRepository(true);
+
+        repository.store(Key.generateKey("test/a"), value("Old Body"));
+        repository.store(Key.generateKey("test/a"), value("New Body"));
+
+        assertEquals(1, repository.bodies.size());
+        assertEquals("New Body", repository.retrieve(Key.generateKey("test/a")).body);
+        assertEquals(1.0, repository.getDedupRatio(), 0.0001);
+    }
+
+    @Test
+    public void testRelease_DropsBodyWithLastReference() {
+        MemoryCacheRepository repository = new MemoryCacheRepository(true);
+        repository.store(Key.generateKey("test/a"), value("Shared Body"));
+        repository.store(Key.generateKey("test/b"), value("Shared Body"));
+
+        repository.release(repository.cache.remove(Key.generateKey("test/a")));
+        assertEquals(1, repository.bodies.size());
+
+        repository.release(repository.cache.remove(Key.generateKey("test/b")));
+        assertEquals(0, repository.bodies.size());
+    }
+
+    @Test
+    public void testStore_WithoutDeduplication() {
+        MemoryCacheRepository repository = new MemoryCacheRepository();
+
+        repository.store(Key.generateKey("test/a"), value("Body"));
+
+        assertNull(repository.bodies);
+        assertTrue(repository.has(Key.generateKey("test/a")));
+        assertEquals(1.0, repository.getDedupRatio(), 0.0001);
+    }
+
+    @Test
+    public void testStoreAndRetrieve() {
+        MemoryCacheRepository repository = new MemoryCacheRepository();
+
+        repository.store(Key.generateKey("test/a"), value("Body"));
+
+        assertTrue(repository.has(Key.generateKey("test/a")));
+        assertEquals("Body", repository.retrieve(Key.generateKey("test/a")).body);
+    }
+
+    @Test
+    public void testStore_NullBodyIsNotStored() {
+        MemoryCacheRepository repository = new MemoryCacheRepository();
+
+        repository.store(Key.generateKey("test/a"), value(null));
+        repository.store(Key.generateKey("test/b"), null);
+        repository.store(null, value("Body"));
+
+        assertTrue(repository.cache.isEmpty());
+        assertFalse(repository.has(null));
+        assertNull(repository.retrieve(null));
+    }
+}
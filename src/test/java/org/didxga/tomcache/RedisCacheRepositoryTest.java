@@ -6,8 +6,12 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.params.SetParams;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -23,8 +27,10 @@ public class RedisCacheRepositoryTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
         // Simulate successful ping for default constructor path, though we inject the mock
-        doNothing().when(mockJedis).ping(); 
+        doReturn("PONG").when(mockJedis).ping(); 
         redisCacheRepository = new RedisCacheRepository(mockJedis);
+        // The constructor pings the server; forget that so tests only see their own interactions
+        clearInvocations(mockJedis);
     }
 
     @Test
@@ -148,6 +154,69 @@ public class RedisCacheRepositoryTest {
         verify(mockJedis).exists("test/uri_has_exception");
     }
     
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStore_Deduplicated() {
+        redisCacheRepository.setDeduplicate(true);
+        Value value = new Value();
+        value.body = "Shared Body";
+        String hash = Util.sha256Hex("Shared Body");
+        when(mockJedis.eval(anyString(), any(List.class), any(List.class))).thenReturn(1L, 0L);
+
+        redisCacheRepository.store(Key.generateKey("test/a"), value);
+        redisCacheRepository.store(Key.generateKey("test/b"), value);
+
+        // each script only touches the keys it declares
+        verify(mockJedis, times(2)).eval(anyString(),
+                eq(Collections.singletonList("tomcache:body:" + hash)),
+                eq(Arrays.asList("Shared Body", "86405000")));
+        verify(mockJedis).set(eq("tomcache:ref:test/a"), eq(hash), any(SetParams.class));
+        verify(mockJedis).set(eq("tomcache:ref:test/b"), eq(hash), any(SetParams.class));
+        verify(mockJedis, never()).set(anyString(), anyString());
+        assertEquals(2.0, redisCacheRepository.getWriteDedupRatio(), 0.0001);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStore_DeduplicatedWithExpiry() {
+        redisCacheRepository.setDeduplicate(true);
+        Key key = Key.generateKey("test/a", new Date(System.currentTimeMillis() + 60000));
+        Value value = new Value();
+        value.body = "Shared Body";
+
+        redisCacheRepository.store(key, value);
+
+        // the body outlives the 60 second pointer by the margin
+        verify(mockJedis).eval(anyString(), any(List.class), eq(Arrays.asList("Shared Body", "65000")));
+        verify(mockJedis).set(eq("tomcache:ref:test/a"), eq(Util.sha256Hex("Shared Body")), any(SetParams.class));
+    }
+
+    @Test
+    public void testRetrieveAndHas_Deduplicated() {
+        redisCacheRepository.setDeduplicate(true);
+        Key key = Key.generateKey("test/a");
+        String hash = Util.sha256Hex("Shared Body");
+        when(mockJedis.get("tomcache:ref:test/a")).thenReturn(hash);
+        when(mockJedis.get("tomcache:body:" + hash)).thenReturn("Shared Body");
+        when(mockJedis.exists("tomcache:ref:test/a")).thenReturn(true);
+
+        Value retrievedValue = redisCacheRepository.retrieve(key);
+
+        assertNotNull(retrievedValue);
+        assertEquals("Shared Body", retrievedValue.body);
+        assertTrue(redisCacheRepository.has(key));
+        verify(mockJedis, never()).get("test/a");
+    }
+
+    @Test
+    public void testRetrieve_DeduplicatedMissingPointer() {
+        redisCacheRepository.setDeduplicate(true);
+        when(mockJedis.get("tomcache:ref:test/a")).thenReturn(null);
+
+        assertNull(redisCacheRepository.retrieve(Key.generateKey("test/a")));
+        verify(mockJedis, times(1)).get(anyString());
+    }
+
     @Test
     public void testClose() {
         redisCacheRepository.close();
@@ -162,7 +231,7 @@ public class RedisCacheRepositoryTest {
         // This is implicitly covered by setUp if mockJedis.ping() is expected & verified.
         // For an explicit test with a new instance:
         Jedis localMockJedis = mock(Jedis.class);
-        doNothing().when(localMockJedis).ping();
+        doReturn("PONG").when(localMockJedis).ping();
         RedisCacheRepository newRepo = new RedisCacheRepository(localMockJedis);
         verify(localMockJedis).ping(); // Verify ping was called during construction
         newRepo.close(); // Clean up
@@ -0,0 +1,64 @@
+package org.didxga.tomcache;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class StaleDataWatcherTest {
+
+    private static Value value(String body) {
+        Value value = new Value();
+        value.body = body;
+        return value;
+    }
+
+    @Test
+    public void testEvictExpired_ReleasesExpiredBodies() {
+        MemoryCacheRepository repository = new MemoryCacheRepository(true);
+        repository.store(Key.generateKey("test/expired", new Date(System.currentTimeMillis() - 1000)), value("Old Body"));
+        repository.store(Key.generateKey("test/fresh", new Date(System.currentTimeMillis() + 60000)), value("Fresh Body"));
+        repository.store(Key.generateKey("test/no-expiry"), value("Forever Body"));
+        StaleDataWatcher watcher = new StaleDataWatcher(repository);
+
+        watcher.evictExpired();
+        watcher.shutdown();
+
+        assertFalse(repository.has(Key.generateKey("test/expired")));
+        assertTrue(repository.has(Key.generateKey("test/fresh")));
+        assertTrue(repository.has(Key.generateKey("test/no-expiry")));
+        assertEquals(2, repository.bodies.size());
+    }
+
+    @Test
+    @SuppressWarnings("serial")
+    public void testEvictExpired_KeepsValueReplacedDuringScan() {
+        final MemoryCacheRepository repository = new MemoryCacheRepository(true);
+        final Key expired = Key.generateKey("test/a", new Date(System.currentTimeMillis() - 1000));
+        repository.store(expired, value("Old Body"));
+        // a store that lands between the watcher reading the entry and removing it
+        repository.cache = new ConcurrentHashMap<Key, Value>(repository.cache) {
+            private boolean raced;
+
+            @Override
+            public boolean remove(Object key, Object value) {
+                if (!raced) {
+                    raced = true;
+                    repository.store(Key.generateKey("test/a", new Date(System.currentTimeMillis() + 60000)), value("New Body"));
+                }
+                return super.remove(key, value);
+            }
+        };
+        StaleDataWatcher watcher = new StaleDataWatcher(repository);
+
+        watcher.evictExpired();
+        watcher.shutdown();
+
+        // the new value stays and keeps its body, the old body was released once by the store
+        assertEquals("New Body", repository.retrieve(expired).body);
+        assertEquals(1, repository.bodies.size());
+        assertEquals(1.0, repository.getDedupRatio(), 0.0001);
+    }
+}
@@ -0,0 +1,146 @@
+package org.didxga.tomcache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.params.SetParams;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TomcacheFilterTest {
+
+    private static final String URI = "/item/1";
+    private static final String LOCK_KEY = "tomcache:fill:" + URI;
+
+    @Mock
+    private Jedis mockJedis;
+    @Mock
+    private FilterConfig filterConfig;
+    @Mock
+    private HttpServletRequest request;
+    @Mock
+    private HttpServletResponse response;
+    @Mock
+    private FilterChain chain;
+
+    private StringWriter client;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(filterConfig.getInitParameter("fillLock")).thenReturn("true");
+        when(filterConfig.getInitParameter("fillLockLeaseMillis")).thenReturn("200");
+        when(filterConfig.getInitParameter("fillLockPollMillis")).thenReturn("5");
+        when(request.getRequestURI()).thenReturn(URI);
+
+        client = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(client, true));
+        when(response.getHeader("Cache-Control")).thenReturn("max-age=60");
+        when(response.getHeaderNames()).thenReturn(Collections.singletonList("Cache-Control"));
+        doAnswer(invocation -> {
+            ((ServletResponse) invocation.getArgument(1)).getWriter().write("Origin Body");
+            return null;
+        }).when(chain).doFilter(any(), any());
+
+        when(mockJedis.exists(URI)).thenReturn(false);
+    }
+
+    private TomcacheFilter filter() throws Exception {
+        TomcacheFilter filter = new TomcacheFilter(new RedisCacheRepository(mockJedis));
+        filter.init(filterConfig);
+        return filter;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFillLock_HolderFillsAndReleases() throws Exception {
+        when(mockJedis.set(eq(LOCK_KEY), anyString(), any(SetParams.class))).thenReturn("OK");
+
+        filter().doFilter(request, response, chain);
+
+        InOrder inOrder = inOrder(mockJedis, chain);
+        inOrder.verify(mockJedis).set(eq(LOCK_KEY), anyString(), any(SetParams.class));
+        inOrder.verify(chain).doFilter(eq(request), any());
+        inOrder.verify(mockJedis).set(URI, "Origin Body");
+        inOrder.verify(mockJedis).eval(anyString(), eq(Collections.singletonList(LOCK_KEY)), any(List.class));
+        assertEquals("Origin Body", client.toString());
+    }
+
+    @Test
+    public void testFillLock_WaiterIsServedFromRepository() throws Exception {
+        when(mockJedis.set(eq(LOCK_KEY), anyString(), any(SetParams.class))).thenReturn(null);
+        when(mockJedis.exists(LOCK_KEY)).thenReturn(true);
+        when(mockJedis.get(URI)).thenReturn(null, null, "Cached Body");
+
+        filter().doFilter(request, response, chain);
+
+        verify(chain, never()).doFilter(any(), any());
+        verify(mockJedis, never()).set(eq(URI), anyString());
+        assertEquals("Cached Body", client.toString());
+    }
+
+    @Test
+    public void testFillLock_LostLeaseFallsBackToOrigin() throws Exception {
+        when(mockJedis.set(eq(LOCK_KEY), anyString(), any(SetParams.class))).thenReturn(null);
+        when(mockJedis.exists(LOCK_KEY)).thenReturn(false);
+        when(mockJedis.get(URI)).thenReturn(null);
+
+        filter().doFilter(request, response, chain);
+
+        verify(chain).doFilter(eq(request), any());
+        verify(mockJedis).set(URI, "Origin Body");
+        assertEquals("Origin Body", client.toString());
+    }
+
+    @Test
+    public void testFillLock_LeaseTimeoutFallsBackToOrigin() throws Exception {
+        when(mockJedis.set(eq(LOCK_KEY), anyString(), any(SetParams.class))).thenReturn(null);
+        when(mockJedis.exists(LOCK_KEY)).thenReturn(true);
+        when(mockJedis.get(URI)).thenReturn(null);
+
+        long start = System.currentTimeMillis();
+        filter().doFilter(request, response, chain);
+
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        verify(chain).doFilter(eq(request), any());
+        assertEquals("Origin Body", client.toString());
+    }
+
+    @Test
+    public void testEntryGoneBeforeRetrieveIsAMiss() throws Exception {
+        when(mockJedis.exists(URI)).thenReturn(true);
+        when(mockJedis.get(URI)).thenReturn(null);
+        when(mockJedis.set(eq(LOCK_KEY), anyString(), any(SetParams.class))).thenReturn("OK");
+
+        filter().doFilter(request, response, chain);
+
+        verify(chain).doFilter(eq(request), any());
+        assertEquals("Origin Body", client.toString());
+    }
+
+    @Test
+    public void testInitPublishesRepository() throws Exception {
+        ServletContext context = mock(ServletContext.class);
+        when(filterConfig.getServletContext()).thenReturn(context);
+        MemoryCacheRepository repository = new MemoryCacheRepository(true);
+
+        new TomcacheFilter(repository).init(filterConfig);
+
+        verify(context).setAttribute(CacheRepository.CONTEXT_ATTRIBUTE, repository);
+    }
+}
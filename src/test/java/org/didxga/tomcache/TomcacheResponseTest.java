@@ -0,0 +1,41 @@
+package org.didxga.tomcache;
+
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TomcacheResponseTest {
+
+    @Test
+    public void testGetWriter_ReturnsSameCapturingWriter() throws Exception {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter client = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(client));
+        TomcacheResponse tomcacheResponse = new TomcacheResponse(response);
+
+        tomcacheResponse.getWriter().write("Hello, ");
+        tomcacheResponse.getWriter().write("World");
+        tomcacheResponse.getWriter().flush();
+
+        assertSame(tomcacheResponse.getWriter(), tomcacheResponse.getWriter());
+        assertEquals("Hello, World", ((TomcacheWriter) tomcacheResponse.getWriter()).getCopy());
+        assertEquals("Hello, World", client.toString());
+        verify(response, times(1)).getWriter();
+    }
+
+    @Test
+    public void testIsHttpServletResponse() {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        TomcacheResponse tomcacheResponse = new TomcacheResponse(response);
+
+        // HttpServlet.service rejects anything else
+        assertTrue(tomcacheResponse instanceof HttpServletResponse);
+        tomcacheResponse.setHeader("Cache-Control", "max-age=60");
+        verify(response).setHeader("Cache-Control", "max-age=60");
+    }
+}
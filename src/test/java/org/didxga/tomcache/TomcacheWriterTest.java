@@ -0,0 +1,48 @@
+package org.didxga.tomcache;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class TomcacheWriterTest {
+
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    public void testCopy_MatchesWhatTheClientReceives() {
+        StringWriter client = new StringWriter();
+        TomcacheWriter writer = new TomcacheWriter(client);
+
+        writer.println("a");
+        writer.println("b");
+        writer.print('c');
+        writer.print(new char[] {'d', 'e'});
+        writer.write("fgh", 1, 2);
+        writer.printf("%d%n", 42);
+        writer.println();
+        writer.flush();
+
+        String expected = "a" + NL + "b" + NL + "cdegh" + "42" + NL + NL;
+        assertEquals(expected, client.toString());
+        assertEquals(expected, writer.getCopy());
+    }
+
+    @Test
+    public void testCopy_AccumulatesSeparateWrites() {
+        TomcacheWriter writer = new TomcacheWriter(new StringWriter());
+
+        writer.write("Hello, ");
+        writer.write("World");
+
+        assertEquals("Hello, World", writer.getCopy());
+    }
+
+    @Test
+    public void testCopy_NullWhenNothingWritten() {
+        TomcacheWriter writer = new TomcacheWriter(new StringWriter());
+
+        assertNull(writer.getCopy());
+    }
+}